@@ -0,0 +1,30 @@
+package it.fabiodezuani.generation.keyed.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Embedded id with a primitive component and a timestamp version.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class Edition {
+
+    @EmbeddedId
+    private EditionId id;
+
+    @Version
+    private Instant version;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    private Publisher publisher;
+
+    @Column(nullable = false)
+    private Integer copies;
+}
@@ -0,0 +1,24 @@
+package it.fabiodezuani.generation.keyed.model;
+
+import jakarta.persistence.Embeddable;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * No all-args constructor, the key is built through its setters.
+ */
+@Embeddable
+@Getter
+@Setter
+@NoArgsConstructor
+@EqualsAndHashCode
+public class EditionId implements Serializable {
+
+    private String isbn;
+
+    private int number;
+}
@@ -0,0 +1,27 @@
+package it.fabiodezuani.generation.keyed.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+/**
+ * Composite key declared with @IdClass, the key components are fields of the entity.
+ */
+@Entity
+@IdClass(LoanId.class)
+@Getter
+@Setter
+@NoArgsConstructor
+public class Loan {
+
+    @Id
+    private Long bookId;
+
+    @Id
+    private String member;
+
+    private LocalDate dueDate;
+}
@@ -0,0 +1,17 @@
+package it.fabiodezuani.generation.keyed.model;
+
+import lombok.*;
+
+import java.io.Serializable;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class LoanId implements Serializable {
+
+    private Long bookId;
+
+    private String member;
+}
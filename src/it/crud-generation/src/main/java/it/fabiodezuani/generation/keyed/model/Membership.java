@@ -0,0 +1,23 @@
+package it.fabiodezuani.generation.keyed.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Association target with an @IdClass key, only referenced by id.
+ */
+@Entity
+@IdClass(MembershipId.class)
+@Getter
+@Setter
+@NoArgsConstructor
+public class Membership {
+
+    @Id
+    private String club;
+
+    @Id
+    private String member;
+}
@@ -0,0 +1,19 @@
+package it.fabiodezuani.generation.keyed.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@EqualsAndHashCode
+public class MembershipId implements Serializable {
+
+    private String club;
+
+    private String member;
+}
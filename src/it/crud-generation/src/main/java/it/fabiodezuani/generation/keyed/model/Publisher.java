@@ -0,0 +1,24 @@
+package it.fabiodezuani.generation.keyed.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.UUID;
+
+/**
+ * Association target, only referenced by id.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class Publisher {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    private String name;
+}
@@ -0,0 +1,39 @@
+package it.fabiodezuani.generation.keyed.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.DynamicUpdate;
+
+/**
+ * Embedded id built through its all-args constructor, with an association and an embedded value object.
+ */
+@Entity
+@DynamicUpdate
+@Getter
+@Setter
+@NoArgsConstructor
+public class Review {
+
+    @EmbeddedId
+    private ReviewId id;
+
+    @Version
+    private Integer version;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    private Publisher publisher;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumns({
+            @JoinColumn(name = "membership_club", referencedColumnName = "club"),
+            @JoinColumn(name = "membership_member", referencedColumnName = "member")
+    })
+    private Membership membership;
+
+    @Embedded
+    private Address address;
+
+    private Integer rating;
+}
@@ -0,0 +1,19 @@
+package it.fabiodezuani.generation.keyed.model;
+
+import jakarta.persistence.Embeddable;
+import lombok.*;
+
+import java.io.Serializable;
+
+@Embeddable
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class ReviewId implements Serializable {
+
+    private Long bookId;
+
+    private String reviewer;
+}
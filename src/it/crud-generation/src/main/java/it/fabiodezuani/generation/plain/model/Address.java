@@ -0,0 +1,17 @@
+package it.fabiodezuani.generation.plain.model;
+
+import jakarta.persistence.Embeddable;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Embeddable
+@Getter
+@Setter
+@NoArgsConstructor
+public class Address {
+
+    private String street;
+
+    private String city;
+}
@@ -0,0 +1,34 @@
+package it.fabiodezuani.generation.plain.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.UUID;
+
+/**
+ * UUID id, generated with compact DTOs.
+ */
+@Entity(name = "Writer")
+@Getter
+@Setter
+@NoArgsConstructor
+public class Author {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Version
+    private Integer version;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Column(nullable = false)
+    private Integer born;
+
+    @Embedded
+    private Address address;
+}
@@ -0,0 +1,30 @@
+package it.fabiodezuani.generation.plain.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Primitive id and primitive version.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class Counter {
+
+    @Id
+    private int id;
+
+    @Version
+    private long version;
+
+    @Column(nullable = false)
+    private String label;
+
+    private int total;
+
+    @Enumerated(EnumType.STRING)
+    private CounterStatus status;
+}
@@ -0,0 +1,6 @@
+package it.fabiodezuani.generation.plain.model;
+
+public enum CounterStatus {
+    OPEN,
+    CLOSED
+}
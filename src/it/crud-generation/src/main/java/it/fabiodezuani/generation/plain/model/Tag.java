@@ -0,0 +1,20 @@
+package it.fabiodezuani.generation.plain.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Id and version declared on the superclass.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class Tag extends BaseEntity {
+
+    @Column(nullable = false)
+    private String label;
+}
@@ -0,0 +1,12 @@
+package it.fabiodezuani.perf;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class PerfApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(PerfApplication.class, args);
+    }
+}
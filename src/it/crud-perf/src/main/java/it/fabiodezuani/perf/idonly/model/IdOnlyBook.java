@@ -0,0 +1,37 @@
+package it.fabiodezuani.perf.idonly.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * Same as {@link it.fabiodezuani.perf.model.Book}, generated with nestedIdOnly.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class IdOnlyBook {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Version
+    private Long version;
+
+    @Column(nullable = false)
+    private String title;
+
+    private String isbn;
+
+    private BigDecimal price;
+
+    private Integer pages;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    private IdOnlyAuthor author;
+}
@@ -0,0 +1,37 @@
+package it.fabiodezuani.perf.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixture entity the CRUD stack under test is generated from, with the default options.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class Book {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Version
+    private Long version;
+
+    @Column(nullable = false)
+    private String title;
+
+    private String isbn;
+
+    private BigDecimal price;
+
+    private Integer pages;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    private Author author;
+}
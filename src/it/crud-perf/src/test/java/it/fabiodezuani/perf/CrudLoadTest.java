@@ -0,0 +1,317 @@
+package it.fabiodezuani.perf;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the Book CRUD stacks generated with each option set with a local load generator and compares SQL statement
+ * counts and server allocations per endpoint with {@code perf-baseline.properties}. Throughput and p99 latency depend
+ * on the machine, they are only written to the results.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class CrudLoadTest {
+
+    private static final int THREADS = Integer.getInteger("perf.threads", 8);
+    private static final int WARMUP_REQUESTS = Integer.getInteger("perf.warmup", 1_000);
+    private static final int REQUESTS = Integer.getInteger("perf.requests", 5_000);
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("perf.tolerance", "0.2"));
+    // Large enough that concurrent writers never hold the same row and its ETag
+    private static final int SEED = 1_000;
+    private static final int AUTHORS = 20;
+    private static final String SERVER_THREAD_PREFIX = "http-nio-";
+
+    private static final Path BASELINE = Path.of("perf-baseline.properties");
+    private static final Path RESULTS = Path.of("target", "perf-results.properties");
+
+    private static final String SQL_PER_REQUEST = ".sqlPerRequest";
+    private static final String ALLOCATED_BYTES_PER_REQUEST = ".allocatedBytesPerRequest";
+
+    /**
+     * Generated stacks under test, the key prefixes their metrics.
+     */
+    private enum Variant {
+        DEFAULT("default", "/api/book", "book", "author", false),
+        COMPACT("compact", "/api/compactbook", "compact_book", "compact_author", false),
+        ID_ONLY("idOnly", "/api/idonlybook", "id_only_book", "id_only_author", true);
+
+        private final String key;
+        private final String path;
+        private final String table;
+        private final String authorTable;
+        // With nestedIdOnly the author is written as its id, the other DTOs cannot set it
+        private final boolean authorById;
+
+        Variant(String key, String path, String table, String authorTable, boolean authorById) {
+            this.key = key;
+            this.path = path;
+            this.table = table;
+            this.authorTable = authorTable;
+            this.authorById = authorById;
+        }
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final Properties results = new Properties();
+    private final Map<Long, String> eTags = new ConcurrentHashMap<>();
+    // Every write changes the row, otherwise Hibernate skips the update
+    private final AtomicInteger revision = new AtomicInteger();
+
+    @Test
+    void crudEndpointsDoNotRegress() throws Exception {
+        for (Variant variant : Variant.values()) {
+            measure(variant);
+        }
+
+        Files.createDirectories(RESULTS.getParent());
+        try (Writer writer = Files.newBufferedWriter(RESULTS)) {
+            results.store(writer, "Load test results, " + THREADS + " threads, " + REQUESTS + " requests per endpoint");
+        }
+
+        Properties baseline = new Properties();
+        try (Reader reader = Files.newBufferedReader(BASELINE)) {
+            baseline.load(reader);
+        }
+        assertNoRegression(baseline);
+    }
+
+    private void measure(Variant variant) throws Exception {
+        seed(variant);
+        eTags.clear();
+        for (long id = 1; id <= SEED; id++) {
+            eTags.put(id, eTag(send(get(variant.path + "/" + id))));
+        }
+        String eTag = eTags.get(1L);
+        String prefix = variant.key + ".";
+
+        measure(prefix + "getById", i -> send(get(variant.path + "/" + (i % SEED + 1))));
+        measure(prefix + "getByIdNotModified", i -> send(HttpRequest.newBuilder(uri(variant.path + "/1"))
+                .header("If-None-Match", eTag)
+                .build()));
+        measure(prefix + "getAll", i -> send(get(variant.path + "?pageNumber=0&pageSize=20")));
+        measure(prefix + "update", i -> write(variant, "PUT", i % SEED + 1, book(variant, i, revision.incrementAndGet())));
+        measure(prefix + "patch", i -> write(variant, "PATCH", i % SEED + 1, "{\"pages\":" + revision.incrementAndGet() + "}"));
+        measure(prefix + "create", i -> send(create(variant, SEED + i)));
+        // Deletes the rows inserted by the create warmup and measurement, in insertion order
+        AtomicLong deleted = new AtomicLong(SEED);
+        measure(prefix + "delete", i -> send(HttpRequest.newBuilder(uri(variant.path + "/" + deleted.incrementAndGet()))
+                .DELETE()
+                .build()));
+    }
+
+    /**
+     * Inserts the authors and the books referencing them with SQL, so that reads also load the relation on every
+     * variant.
+     */
+    private void seed(Variant variant) {
+        for (int a = 1; a <= AUTHORS; a++) {
+            jdbcTemplate.update("insert into " + variant.authorTable + " (name) values (?)", "Author " + a);
+        }
+        List<Object[]> books = new ArrayList<>();
+        for (int i = 0; i < SEED; i++) {
+            books.add(new Object[]{"Book " + i, "isbn-" + i, 100 + i % 500, i % AUTHORS + 1});
+        }
+        jdbcTemplate.batchUpdate("insert into " + variant.table
+                + " (version, title, isbn, price, pages, author_id) values (0, ?, ?, 10.5, ?, ?)", books);
+    }
+
+    private void measure(String endpoint, Call call) throws Exception {
+        run(call, WARMUP_REQUESTS);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        Map<Long, Long> allocatedBefore = serverAllocatedBytes();
+        long start = System.nanoTime();
+
+        long[] latencies = run(call, REQUESTS);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = allocatedSince(allocatedBefore);
+        Arrays.sort(latencies);
+
+        results.setProperty(endpoint + ".throughput", format(REQUESTS / seconds));
+        results.setProperty(endpoint + ".p99Millis", format(latencies[(int) Math.ceil(latencies.length * 0.99) - 1] / 1e6));
+        results.setProperty(endpoint + ALLOCATED_BYTES_PER_REQUEST, format((double) allocated / REQUESTS));
+        results.setProperty(endpoint + SQL_PER_REQUEST, format((double) statistics.getPrepareStatementCount() / REQUESTS));
+    }
+
+    private long[] run(Call call, int count) throws Exception {
+        long[] latencies = new long[count];
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(executor.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                        long begin = System.nanoTime();
+                        call.run(i);
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+            // The client threads must be gone before the allocation snapshot is taken
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES), "Load generator threads did not terminate");
+        }
+        return latencies;
+    }
+
+    /**
+     * Gates statement counts exactly and allocations within the tolerance. Every gated result needs a baseline
+     * entry and the baseline may hold nothing else, so that a metric cannot silently drop out of the gate.
+     */
+    private void assertNoRegression(Properties baseline) {
+        List<String> regressions = new ArrayList<>();
+        for (String key : results.stringPropertyNames()) {
+            if (isGated(key) && !baseline.containsKey(key)) {
+                regressions.add(key + ": missing from the baseline");
+            }
+        }
+        for (String key : baseline.stringPropertyNames()) {
+            String value = results.getProperty(key);
+            if (!isGated(key)) {
+                regressions.add(key + ": not a gated metric");
+                continue;
+            }
+            if (value == null) {
+                regressions.add(key + ": not measured");
+                continue;
+            }
+            double expected = Double.parseDouble(baseline.getProperty(key));
+            double actual = Double.parseDouble(value);
+            // Statement counts are deterministic, any extra query is a regression
+            double tolerance = key.endsWith(SQL_PER_REQUEST) ? 0 : TOLERANCE;
+            if (actual > expected * (1 + tolerance)) {
+                regressions.add(key + ": " + value + " (baseline " + expected + ")");
+            }
+        }
+        assertTrue(regressions.isEmpty(), () -> "Performance regressions:\n" + String.join("\n", regressions));
+    }
+
+    private static boolean isGated(String key) {
+        return key.endsWith(SQL_PER_REQUEST) || key.endsWith(ALLOCATED_BYTES_PER_REQUEST);
+    }
+
+    /**
+     * Bytes allocated so far by each Tomcat worker thread, keyed by thread id. The load generator runs in the
+     * same JVM and is left out.
+     */
+    private Map<Long, Long> serverAllocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Map<Long, Long> allocated = new HashMap<>();
+        for (ThreadInfo thread : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (thread != null && thread.getThreadName().startsWith(SERVER_THREAD_PREFIX)) {
+                long bytes = threads.getThreadAllocatedBytes(thread.getThreadId());
+                if (bytes >= 0) {
+                    allocated.put(thread.getThreadId(), bytes);
+                }
+            }
+        }
+        return allocated;
+    }
+
+    /**
+     * Sum of the per-thread deltas, threads started in the meantime count from zero.
+     */
+    private long allocatedSince(Map<Long, Long> before) {
+        return serverAllocatedBytes().entrySet().stream()
+                .mapToLong(entry -> entry.getValue() - before.getOrDefault(entry.getKey(), 0L))
+                .sum();
+    }
+
+    /**
+     * Sends a versioned write with the last ETag seen for the row and records the one returned.
+     */
+    private void write(Variant variant, String method, long id, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri(variant.path + "/" + id))
+                .header("Content-Type", "application/json")
+                .header("If-Match", eTags.get(id))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        eTags.put(id, eTag(send(request)));
+    }
+
+    private static String eTag(HttpResponse<String> response) {
+        return response.headers().firstValue("ETag").orElseThrow();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 400) {
+            throw new IllegalStateException(request.method() + " " + request.uri() + " returned " + response.statusCode());
+        }
+        return response;
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).build();
+    }
+
+    private HttpRequest create(Variant variant, int i) {
+        return HttpRequest.newBuilder(uri(variant.path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(book(variant, i, 100 + i % 500)))
+                .build();
+    }
+
+    private static String book(Variant variant, int i, int pages) {
+        String author = variant.authorById ? ",\"author\":" + (i % AUTHORS + 1) : "";
+        return "{\"title\":\"Book " + i + "\",\"isbn\":\"isbn-" + i + "\",\"price\":10.5,\"pages\":" + pages
+                + author + "}";
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        void run(int i) throws Exception;
+    }
+}
@@ -2,12 +2,15 @@ package it.fabiodezuani;
 
 import com.squareup.javapoet.*;
 import it.fabiodezuani.generator.*;
+import it.fabiodezuani.model.IdDefinition;
 import it.fabiodezuani.model.MapperEnum;
+import it.fabiodezuani.model.VersionDefinition;
 import it.fabiodezuani.utils.GeneratorUtil;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,11 +27,12 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Maven Plugin to generate CRUD services with DTOs and MapStruct.
  */
-@Mojo(name = "generate-crud")
+@Mojo(name = "generate-crud", requiresDependencyResolution = ResolutionScope.COMPILE)
 public class CrudGeneratorMojo extends AbstractMojo {
 
     private static final Logger logger = LoggerFactory.getLogger(CrudGeneratorMojo.class);
@@ -57,6 +61,12 @@ public class CrudGeneratorMojo extends AbstractMojo {
     private boolean skipController;
     @Parameter(property = "skipMapper")
     private boolean skipMapper;
+    @Parameter(property = "generatePatch")
+    private boolean generatePatch;
+    @Parameter(property = "compactDto")
+    private boolean compactDto;
+    @Parameter(property = "nestedIdOnly")
+    private boolean nestedIdOnly;
 
     @Parameter(defaultValue = "${project}", readonly = true, required = true)
     private MavenProject project;
@@ -81,20 +91,24 @@ public class CrudGeneratorMojo extends AbstractMojo {
             logger.info("✅ Model class successfully loaded: {}", entityClass.getName());
 
             // Extract joined entities from fields
-            for (Field field : entityClass.getDeclaredFields()) {
-                if (!field.getType().getPackageName().startsWith("java")) {
+            for (Field field : GeneratorUtil.getFields(entityClass)) {
+                if (IdDefinition.isEmbeddedId(field)) {
+                    // Composite keys are copied as they are, no DTO nor mapper needed
+                    continue;
+                }
+                if (!GeneratorUtil.isPlainType(field.getType())) {
                     // Direct entity reference
                     joinedEntities.add(field.getType());
                 } else if (field.getGenericType() instanceof java.lang.reflect.ParameterizedType paramType) {
                     // Handle collections and maps
                     if (List.class.isAssignableFrom((Class<?>) paramType.getRawType())) {
                         Class<?> listType = (Class<?>) paramType.getActualTypeArguments()[0];
-                        if (!listType.getPackageName().startsWith("java")) {
+                        if (!GeneratorUtil.isPlainType(listType)) {
                             joinedEntities.add(listType);
                         }
                     } else if (Map.class.isAssignableFrom((Class<?>) paramType.getRawType())) {
                         Class<?> valueType = (Class<?>) paramType.getActualTypeArguments()[1];
-                        if (!valueType.getPackageName().startsWith("java")) {
+                        if (!GeneratorUtil.isPlainType(valueType)) {
                             joinedEntities.add(valueType);
                         }
                     }
@@ -103,22 +117,42 @@ public class CrudGeneratorMojo extends AbstractMojo {
 
             String packageName = entityClass.getPackage().getName();
             String entityName = entityClass.getSimpleName();
+            IdDefinition idDefinition = IdDefinition.of(entityClass);
+            VersionDefinition versionDefinition = VersionDefinition.of(entityClass);
 
             logger.info("📌 Root package: {}", rootPackage);
             logger.info("📌 Package name: {}", packageName);
             logger.info("📌 Entity name: {}", entityName);
             logger.info("📌 Found {} joined entities", joinedEntities.size());
+            if (idDefinition.isIdClass()) {
+                logger.info("📌 Id: @IdClass {} ({})", idDefinition.getType().getSimpleName(),
+                        idDefinition.getComponents().stream().map(Field::getName).toList());
+            } else {
+                logger.info("📌 Id: {} ({})", idDefinition.getFieldName(), idDefinition.getType().getSimpleName());
+            }
+            if (versionDefinition != null) {
+                logger.info("📌 Version: {} ({}), ETag support enabled", versionDefinition.getFieldName(), versionDefinition.getType().getSimpleName());
+            }
+
+            if (generatePatch && !GeneratorUtil.hasAnnotation(entityClass, Set.of("org.hibernate.annotations.DynamicUpdate"))) {
+                logger.warn("⚠️ {} is not annotated with @DynamicUpdate, PATCH will still write every column", entityName);
+            }
+
+            if (nestedIdOnly && mapper != MapperEnum.MAPSTRUCT) {
+                logger.warn("⚠️ nestedIdOnly requires the MAPSTRUCT mapper, relations will be generated as nested DTOs");
+                nestedIdOnly = false;
+            }
 
             logger.info("📌 Generating DTOs...");
-            dtoGenerator.generate(rootPackage, entityClass, entityName, skipDto);
+            dtoGenerator.generate(rootPackage, entityClass, entityName, idDefinition, skipDto, generatePatch, compactDto, nestedIdOnly);
             logger.info("📌 Generating Mapper...");
-            mapperGenerator.generate(rootPackage, entityName, joinedEntities, skipMapper, mapper);
+            mapperGenerator.generate(rootPackage, entityClass, entityName, idDefinition, joinedEntities, skipMapper, mapper, generatePatch, nestedIdOnly);
             logger.info("📌 Generating Repository...");
-            repositoryGenerator.generate(rootPackage, entityName, skipRepository);
+            repositoryGenerator.generate(rootPackage, entityClass, entityName, idDefinition, versionDefinition, skipRepository);
             logger.info("📌 Generating Services...");
-            serviceGenerator.generate(rootPackage, entityName, skipService);
+            serviceGenerator.generate(rootPackage, entityName, idDefinition, versionDefinition, skipService, generatePatch, compactDto);
             logger.info("📌 Generating Controllers...");
-            controllerGenerator.generate(rootPackage, entityName, skipController);
+            controllerGenerator.generate(rootPackage, entityName, idDefinition, versionDefinition, skipController, generatePatch);
 
             logger.info("🎉 CRUD generation completed successfully!");
 
@@ -1,12 +1,18 @@
 package it.fabiodezuani.generator;
 
 import com.squareup.javapoet.*;
+import it.fabiodezuani.model.IdDefinition;
+import it.fabiodezuani.model.VersionDefinition;
 import it.fabiodezuani.utils.GeneratorUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.lang.model.element.Modifier;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class ControllerGenerator {
@@ -18,39 +24,30 @@ public class ControllerGenerator {
         this.utils = utils;
     }
 
-    public void generate(String packageName, String entityName, boolean skipController) throws IOException {
+    public void generate(String packageName, String entityName, IdDefinition idDefinition,
+                         VersionDefinition versionDefinition, boolean skipController, boolean generatePatch) throws IOException {
 
         if(skipController) {
             logger.info("\uD83E\uDD20 Controllers skipped!");
             return;
         }
 
+        ClassName service = utils.getServicePackage(packageName, entityName);
+        ClassName dto = utils.getDtoPackage(packageName, entityName);
+        TypeName response = ParameterizedTypeName.get(ClassName.get("org.springframework.http", "ResponseEntity"), ParameterizedTypeName.get(utils.getDtoClassName(packageName, "BaseResponseDto"), dto));
+
         // Controller class
-        TypeSpec controller = TypeSpec.classBuilder(entityName + "Controller")
+        TypeSpec.Builder controllerBuilder = TypeSpec.classBuilder(entityName + "Controller")
                 .addModifiers(Modifier.PUBLIC)
                 .addAnnotation(ClassName.get("org.springframework.web.bind.annotation", "RestController"))
                 .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.web.bind.annotation", "RequestMapping"))
                         .addMember("value", "$S", "/api/" + entityName.toLowerCase())
                         .build())
                 .addAnnotation(ClassName.get("lombok", "RequiredArgsConstructor")) // Lombok annotation for constructor
-                .addField(utils.getServicePackage(packageName, entityName), "service", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(service, "service", Modifier.PRIVATE, Modifier.FINAL)
 
                 // Get by ID
-                .addMethod(MethodSpec.methodBuilder("getById")
-                        .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.web.bind.annotation", "GetMapping"))
-                                .addMember("value", "$S", "/{id}")
-                                .build())
-                        .addModifiers(Modifier.PUBLIC)
-                        .returns(utils.getDtoPackage(packageName, entityName))
-                        .addParameter(ParameterSpec.builder(
-                                        Long.class, "id"
-                                )
-                                .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.web.bind.annotation", "PathVariable"))
-                                        .addMember("value", "$S", "id")
-                                        .build())
-                                .build())
-                        .addStatement("return service.findById(id)")
-                        .build())
+                .addMethod(getByIdMethod(service, dto, idDefinition, versionDefinition))
 
 
                 // Get all
@@ -75,42 +72,153 @@ public class ControllerGenerator {
 
 
                 // Update (PUT)
-                .addMethod(MethodSpec.methodBuilder("update")
-                        .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.web.bind.annotation", "PutMapping"))
-                                .addMember("value", "$S", "/{id}")
-                                .build()).addModifiers(Modifier.PUBLIC)
-                        .returns(ParameterizedTypeName.get(ClassName.get("org.springframework.http", "ResponseEntity"), ParameterizedTypeName.get(utils.getDtoClassName(packageName, "BaseResponseDto"), utils.getDtoPackage(packageName, entityName))))
-                        .addParameter(ParameterSpec.builder(
-                                        Long.class, "id"
-                                )
-                                .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.web.bind.annotation", "PathVariable"))
-                                        .addMember("value", "$S", "id")
-                                        .build()).build())
-                        .addParameter(ParameterSpec.builder(utils.getDtoPackage(packageName, entityName), "dto")
-                                .addAnnotation(ClassName.get("org.springframework.web.bind.annotation", "RequestBody"))
-                                .build())
-                        .addStatement("return ResponseEntity.ok(new BaseResponseDto<>(service.update(id, dto)))")
-                        .build())
+                .addMethod(writeMethod("update", "PutMapping", service, dto, dto, response, idDefinition, versionDefinition))
 
 
                 // Delete (DELETE)
                 .addMethod(MethodSpec.methodBuilder("delete")
                         .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.web.bind.annotation", "DeleteMapping"))
-                                .addMember("value", "$S", "/{id}")
+                                .addMember("value", "$S", idDefinition.getPath())
                                 .build())
                         .addModifiers(Modifier.PUBLIC)
-                        .addParameter(ParameterSpec.builder(
-                                        Long.class, "id"
-                                )
-                                .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.web.bind.annotation", "PathVariable"))
-                                        .addMember("value", "$S", "id")
-                                        .build()).build()).addStatement("service.deleteById(id)")
+                        .addParameters(idParameters(idDefinition))
+                        .addCode(idInitializer(idDefinition))
+                        .addStatement("service.deleteById(id)")
+                        .build());
+
+        if (generatePatch) {
+            // Partial update (PATCH)
+            controllerBuilder.addMethod(writeMethod("patch", "PatchMapping", service, utils.getPatchDtoPackage(packageName, entityName), dto, response, idDefinition, versionDefinition));
+        }
+
+        utils.saveJavaFile(packageName + ".controller", controllerBuilder.build());
+    }
+
+    private MethodSpec getByIdMethod(ClassName service, ClassName dto, IdDefinition idDefinition, VersionDefinition versionDefinition) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("getById")
+                .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.web.bind.annotation", "GetMapping"))
+                        .addMember("value", "$S", idDefinition.getPath())
+                        .build())
+                .addModifiers(Modifier.PUBLIC)
+                .addParameters(idParameters(idDefinition));
+
+        if (versionDefinition == null) {
+            return method.returns(dto)
+                    .addCode(idInitializer(idDefinition))
+                    .addStatement("return service.findById(id)")
+                    .build();
+        }
+
+        // A matching If-None-Match is answered from the version alone, skipping mapping and serialization
+        return method.returns(ParameterizedTypeName.get(ClassName.get("org.springframework.http", "ResponseEntity"), dto))
+                .addParameter(header("If-None-Match", "ifNoneMatch"))
+                .addCode(idInitializer(idDefinition))
+                .beginControlFlow("if (ifNoneMatch != null)")
+                .addStatement("$T version = service.findVersionById(id)", versionDefinition.getBoxedTypeName())
+                .beginControlFlow("if ($T.matches(ifNoneMatch, version, true))", service)
+                .addStatement("return $T.status($T.NOT_MODIFIED).eTag($T.eTag(version)).build()",
+                        ClassName.get("org.springframework.http", "ResponseEntity"), ClassName.get("org.springframework.http", "HttpStatus"), service)
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("$T dto = service.findById(id)", dto)
+                .addStatement("return dto == null ? ResponseEntity.ok(dto) : ResponseEntity.ok().eTag($T.eTag(dto.$L())).body(dto)",
+                        service, versionDefinition.getGetterName())
+                .build();
+    }
+
+    private MethodSpec writeMethod(String name, String mapping, ClassName service, ClassName body, ClassName dto, TypeName response,
+                                   IdDefinition idDefinition, VersionDefinition versionDefinition) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder(name)
+                .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.web.bind.annotation", mapping))
+                        .addMember("value", "$S", idDefinition.getPath())
                         .build())
+                .addModifiers(Modifier.PUBLIC)
+                .returns(response)
+                .addParameters(idParameters(idDefinition));
+
+        if (versionDefinition == null) {
+            return method.addParameter(ParameterSpec.builder(body, "dto")
+                            .addAnnotation(ClassName.get("org.springframework.web.bind.annotation", "RequestBody"))
+                            .build())
+                    .addCode(idInitializer(idDefinition))
+                    .addStatement("return ResponseEntity.ok(new BaseResponseDto<>(service.$L(id, dto)))", name)
+                    .build();
+        }
 
+        // If-Match is checked by the service in the write transaction. A mismatch, or a concurrent write
+        // detected on flush, fails the precondition when one was given and is a conflict otherwise
+        return method.addParameter(header("If-Match", "ifMatch"))
+                .addParameter(ParameterSpec.builder(body, "dto")
+                        .addAnnotation(ClassName.get("org.springframework.web.bind.annotation", "RequestBody"))
+                        .build())
+                .addCode(idInitializer(idDefinition))
+                .beginControlFlow("try")
+                .addStatement("$T result = service.$L(id, ifMatch, dto)", dto, name)
+                .addStatement("return result == null ? ResponseEntity.ok(new BaseResponseDto<>(result)) : ResponseEntity.ok().eTag($T.eTag(result.$L())).body(new BaseResponseDto<>(result))",
+                        service, versionDefinition.getGetterName())
+                .nextControlFlow("catch ($T e)", ClassName.get("org.springframework.dao", "OptimisticLockingFailureException"))
+                .addStatement("return $T.status(ifMatch != null ? $T.PRECONDITION_FAILED : $T.CONFLICT).build()",
+                        ClassName.get("org.springframework.http", "ResponseEntity"), ClassName.get("org.springframework.http", "HttpStatus"),
+                        ClassName.get("org.springframework.http", "HttpStatus"))
+                .endControlFlow()
+                .build();
+    }
 
+    private ParameterSpec header(String header, String name) {
+        return ParameterSpec.builder(String.class, name)
+                .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.web.bind.annotation", "RequestHeader"))
+                        .addMember("value", "$S", header)
+                        .addMember("required", "false")
+                        .build())
                 .build();
+    }
 
-        utils.saveJavaFile(packageName + ".controller", controller);
+    private List<ParameterSpec> idParameters(IdDefinition idDefinition) {
+        List<ParameterSpec> parameters = new ArrayList<>();
+        if (!idDefinition.isComposite()) {
+            parameters.add(pathVariable(idDefinition.getTypeName(), "id"));
+            return parameters;
+        }
+        // Composite keys are addressed with one path segment per key component
+        for (Field component : idDefinition.getComponents()) {
+            parameters.add(pathVariable(TypeName.get(component.getType()), component.getName()));
+        }
+        return parameters;
+    }
+
+    private ParameterSpec pathVariable(TypeName type, String name) {
+        return ParameterSpec.builder(type, name)
+                .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.web.bind.annotation", "PathVariable"))
+                        .addMember("value", "$S", name)
+                        .build())
+                .build();
+    }
+
+    private CodeBlock idInitializer(IdDefinition idDefinition) {
+        if (!idDefinition.isComposite()) {
+            return CodeBlock.of("");
+        }
+
+        List<Field> components = idDefinition.getComponents();
+        Class<?>[] componentTypes = components.stream().map(Field::getType).toArray(Class<?>[]::new);
+        String arguments = String.join(", ", components.stream().map(Field::getName).toList());
+
+        // Prefer an all-args constructor, fall back to the no-args one and setters
+        for (Constructor<?> constructor : idDefinition.getType().getConstructors()) {
+            if (Arrays.equals(constructor.getParameterTypes(), componentTypes)) {
+                return CodeBlock.builder()
+                        .addStatement("$T id = new $T($L)", idDefinition.getType(), idDefinition.getType(), arguments)
+                        .build();
+            }
+        }
+
+        CodeBlock.Builder code = CodeBlock.builder()
+                .addStatement("$T id = new $T()", idDefinition.getType(), idDefinition.getType());
+        for (Field component : components) {
+            String name = component.getName();
+            code.addStatement("id.$L($L)", GeneratorUtil.accessorName("set", name), name);
+        }
+        return code.build();
     }
 
 }
@@ -1,6 +1,8 @@
 package it.fabiodezuani.generator;
 
 import com.squareup.javapoet.*;
+import it.fabiodezuani.model.IdDefinition;
+import it.fabiodezuani.model.VersionDefinition;
 import it.fabiodezuani.utils.GeneratorUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,24 +16,40 @@ import java.util.Map;
 public class DtoGenerator {
     private static final Logger logger = LoggerFactory.getLogger(DtoGenerator.class);
 
+    private static final java.util.Set<String> NOT_NULL_ANNOTATIONS = java.util.Set.of(
+            "jakarta.validation.constraints.NotNull",
+            "javax.validation.constraints.NotNull",
+            "lombok.NonNull");
+    private static final java.util.Set<String> COLUMN_ANNOTATIONS = java.util.Set.of(
+            "jakarta.persistence.Column",
+            "javax.persistence.Column");
+    private static final java.util.Set<String> BASIC_ANNOTATIONS = java.util.Set.of(
+            "jakarta.persistence.Basic",
+            "javax.persistence.Basic");
+
     private GeneratorUtil utils;
 
     public DtoGenerator(GeneratorUtil utils) {
         this.utils = utils;
     }
 
-    public void generate(String packageName, Class<?> entityClass, String entityName, boolean skipDto) throws IOException {
+    public void generate(String packageName, Class<?> entityClass, String entityName, IdDefinition idDefinition,
+                         boolean skipDto, boolean generatePatch, boolean compactDto,
+                         boolean nestedIdOnly) throws IOException {
 
         if (skipDto) {
             logger.info("\uD83E\uDD20 DTOs skipped!");
             return;
         }
 
-        generateCommonDtos(packageName);
-        generateDto(packageName, entityClass, entityName);
+        generateCommonDtos(packageName, compactDto);
+        generateDto(packageName, entityClass, entityName, compactDto, nestedIdOnly);
+        if (generatePatch) {
+            generatePatchDto(packageName, entityClass, entityName, idDefinition);
+        }
     }
 
-    private void generateCommonDtos(String packageName) throws IOException {
+    private void generateCommonDtos(String packageName, boolean compactDto) throws IOException {
         TypeSpec paginationRequestDto = TypeSpec.classBuilder("PaginationRequestDto")
                 .addAnnotation(ClassName.get("lombok", "RequiredArgsConstructor"))
                 .addAnnotation(ClassName.get("lombok", "Data"))
@@ -52,45 +70,66 @@ public class DtoGenerator {
 
         utils.saveJavaFile(packageName + ".dto", paginationRequestDto);
 
-        TypeSpec baseResponseDto = TypeSpec.classBuilder("BaseResponseDto")
+        FieldSpec.Builder success = FieldSpec.builder(Boolean.class, "success", Modifier.PRIVATE);
+        MethodSpec.Builder dataConstructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(TypeVariableName.get("T"), "data")
+                .addStatement("this.data = data");
+        if (!compactDto) {
+            success.initializer("true");
+            dataConstructor.addStatement("this.success = true");
+        }
+
+        TypeSpec.Builder baseResponseDto = TypeSpec.classBuilder("BaseResponseDto")
                         .addAnnotation(ClassName.get("lombok", "Data"))
                         .addAnnotation(ClassName.get("lombok", "AllArgsConstructor"))
                         .addTypeVariable(TypeVariableName.get("T"))
                         .addModifiers(Modifier.PUBLIC)
-                        .addField(FieldSpec.builder(Boolean.class, "success", Modifier.PRIVATE)
-                                .initializer("true")
-                                .build())
+                        .addField(success.build())
                         .addField(FieldSpec.builder(String.class, "message", Modifier.PRIVATE).build())
                         .addField(FieldSpec.builder(TypeVariableName.get("T"), "data", Modifier.PRIVATE).build())
-                        .addMethod(MethodSpec.constructorBuilder()
-                                .addModifiers(Modifier.PUBLIC)
-                                .addParameter(TypeVariableName.get("T"), "data")
-                                .addStatement("this.data = data")
-                                .addStatement("this.success = true")
-                                .build())
-                        .build();
-
-        utils.saveJavaFile(packageName + ".dto", baseResponseDto);
+                        .addMethod(dataConstructor.build());
+
+        if (compactDto) {
+            // Leave out the message when not set, and success unless a failure sets it to false
+            baseResponseDto.addAnnotation(jsonIncludeNonNull());
+        }
+
+        utils.saveJavaFile(packageName + ".dto", baseResponseDto.build());
     }
 
-    private void generateDto(String packageName, Class<?> entityClass, String entityName) throws IOException {
+    private void generateDto(String packageName, Class<?> entityClass, String entityName, boolean compactDto,
+                             boolean nestedIdOnly) throws IOException {
         // Keep track of processed entities to prevent infinite recursion
-        generateDtoInternal(packageName, entityClass, entityName, new java.util.HashSet<>());
+        generateDtoInternal(packageName, entityClass, entityName, compactDto, nestedIdOnly, new java.util.HashSet<>());
     }
 
-    private void generateDtoInternal(String packageName, Class<?> entityClass, String entityName,
-                                    java.util.Set<Class<?>> processedEntities) throws IOException {
+    private void generateDtoInternal(String packageName, Class<?> entityClass, String entityName, boolean compactDto,
+                                    boolean nestedIdOnly, java.util.Set<Class<?>> processedEntities) throws IOException {
         if (processedEntities.contains(entityClass)) {
             return;
         }
         processedEntities.add(entityClass);
 
         TypeSpec.Builder dtoBuilder = TypeSpec.classBuilder(entityName + "Dto")
-                .addAnnotation(ClassName.get("lombok", "RequiredArgsConstructor"))
-                .addAnnotation(ClassName.get("lombok", "Data"))
                 .addModifiers(Modifier.PUBLIC);
+        if (compactDto) {
+            // Immutable DTO, deserialized by Jackson and built by MapStruct through the Lombok builder
+            dtoBuilder.addAnnotation(ClassName.get("lombok", "Value"))
+                    .addAnnotation(ClassName.get("lombok", "Builder"))
+                    .addAnnotation(ClassName.get("lombok.extern.jackson", "Jacksonized"))
+                    .addAnnotation(ClassName.get("lombok", "With"))
+                    .addAnnotation(jsonIncludeNonNull());
+        } else {
+            dtoBuilder.addAnnotation(ClassName.get("lombok", "RequiredArgsConstructor"))
+                    .addAnnotation(ClassName.get("lombok", "Data"));
+        }
+
+        // The id and the version stay nullable, they are unset on new entities
+        VersionDefinition versionDefinition = VersionDefinition.of(entityClass);
+        List<String> propertyOrder = new java.util.ArrayList<>();
 
-        for (Field field : entityClass.getDeclaredFields()) {
+        for (Field field : GeneratorUtil.getFields(entityClass)) {
             java.lang.reflect.Type type = field.getGenericType();
             if (type instanceof java.lang.reflect.ParameterizedType paramType) {
                 java.lang.reflect.Type[] typeArgs = paramType.getActualTypeArguments();
@@ -98,8 +137,14 @@ public class DtoGenerator {
 
                 if (List.class.isAssignableFrom(rawType)) {
                     Class<?> genericType = (Class<?>) typeArgs[0];
-                    if (!genericType.getPackageName().startsWith("java")) {
-                        generateDtoInternal(packageName, genericType, genericType.getSimpleName(), processedEntities);
+                    if (nestedIdOnly && GeneratorUtil.isAssociation(field, genericType)) {
+                        dtoBuilder.addField(FieldSpec.builder(
+                                ParameterizedTypeName.get(ClassName.get(List.class), IdDefinition.of(genericType).getBoxedTypeName()),
+                                field.getName(),
+                                Modifier.PRIVATE
+                        ).build());
+                    } else if (!GeneratorUtil.isPlainType(genericType)) {
+                        generateDtoInternal(packageName, genericType, genericType.getSimpleName(), compactDto, nestedIdOnly, processedEntities);
                         ClassName dtoType = utils.getDtoPackage(packageName, genericType.getSimpleName());
                         dtoBuilder.addField(FieldSpec.builder(
                                 ParameterizedTypeName.get(ClassName.get(List.class), dtoType),
@@ -112,8 +157,18 @@ public class DtoGenerator {
                 } else if (Map.class.isAssignableFrom(rawType)) {
                     Class<?> keyType = (Class<?>) typeArgs[0];
                     Class<?> valueType = (Class<?>) typeArgs[1];
-                    if (!valueType.getPackageName().startsWith("java")) {
-                        generateDtoInternal(packageName, valueType, valueType.getSimpleName(), processedEntities);
+                    if (nestedIdOnly && GeneratorUtil.isAssociation(field, valueType)) {
+                        dtoBuilder.addField(FieldSpec.builder(
+                                ParameterizedTypeName.get(
+                                        ClassName.get(Map.class),
+                                        ClassName.get(keyType),
+                                        IdDefinition.of(valueType).getBoxedTypeName()
+                                ),
+                                field.getName(),
+                                Modifier.PRIVATE
+                        ).build());
+                    } else if (!GeneratorUtil.isPlainType(valueType)) {
+                        generateDtoInternal(packageName, valueType, valueType.getSimpleName(), compactDto, nestedIdOnly, processedEntities);
                         ClassName valueDtoType = utils.getDtoPackage(packageName, valueType.getSimpleName());
                         dtoBuilder.addField(FieldSpec.builder(
                                 ParameterizedTypeName.get(
@@ -128,16 +183,90 @@ public class DtoGenerator {
                         dtoBuilder.addField(FieldSpec.builder(field.getType(), field.getName(), Modifier.PRIVATE).build());
                     }
                 }
-            } else if (field.getType().getPackageName().startsWith("java")) {
+            } else if (GeneratorUtil.isPlainType(field.getType())) {
+                TypeName fieldType = TypeName.get(field.getType());
+                boolean nullable = IdDefinition.isId(field) || field.getName().equals("id")
+                        || (versionDefinition != null && field.getName().equals(versionDefinition.getFieldName()));
+                if (compactDto && !nullable && fieldType.isBoxedPrimitive() && isNonNull(field)) {
+                    fieldType = fieldType.unbox();
+                }
+                dtoBuilder.addField(FieldSpec.builder(fieldType, field.getName(), Modifier.PRIVATE).build());
+            } else if (IdDefinition.isEmbeddedId(field)) {
+                // Composite keys are exposed as they are, so the mapper can copy them without a nested DTO
                 dtoBuilder.addField(FieldSpec.builder(field.getType(), field.getName(), Modifier.PRIVATE).build());
+            } else if (nestedIdOnly && GeneratorUtil.isAssociation(field, field.getType())) {
+                // The relation is represented by its id, read without initializing lazy proxies
+                dtoBuilder.addField(FieldSpec.builder(IdDefinition.of(field.getType()).getBoxedTypeName(), field.getName(), Modifier.PRIVATE).build());
             } else {
                 String nestedEntityName = field.getType().getSimpleName();
-                generateDtoInternal(packageName, field.getType(), nestedEntityName, processedEntities);
+                generateDtoInternal(packageName, field.getType(), nestedEntityName, compactDto, nestedIdOnly, processedEntities);
                 ClassName dtoType = utils.getDtoPackage(packageName, nestedEntityName);
-                dtoBuilder.addField(FieldSpec.builder(dtoType, field.getName(), Modifier.PRIVATE)
-                        .addAnnotation(ClassName.get("com.fasterxml.jackson.annotation", "JsonIgnore"))
-                        .build());
+                FieldSpec.Builder nested = FieldSpec.builder(dtoType, field.getName(), Modifier.PRIVATE);
+                // Embedded value objects cannot point back to the entity, so the compact and id-only DTOs expose
+                // them instead of ignoring them, otherwise a PUT would clear their columns
+                if (!((compactDto || nestedIdOnly) && GeneratorUtil.isEmbedded(field))) {
+                    nested.addAnnotation(ClassName.get("com.fasterxml.jackson.annotation", "JsonIgnore"));
+                }
+                dtoBuilder.addField(nested.build());
             }
+            propertyOrder.add(field.getName());
+        }
+
+        if (compactDto && !propertyOrder.isEmpty()) {
+            AnnotationSpec.Builder order = AnnotationSpec.builder(ClassName.get("com.fasterxml.jackson.annotation", "JsonPropertyOrder"));
+            propertyOrder.forEach(name -> order.addMember("value", "$S", name));
+            dtoBuilder.addAnnotation(order.build());
+        }
+
+        utils.saveJavaFile(packageName + ".dto", dtoBuilder.build());
+    }
+
+    private boolean isNonNull(Field field) {
+        return GeneratorUtil.hasAnnotation(field, NOT_NULL_ANNOTATIONS)
+                || Boolean.FALSE.equals(GeneratorUtil.getAnnotationValue(field, COLUMN_ANNOTATIONS, "nullable"))
+                || Boolean.FALSE.equals(GeneratorUtil.getAnnotationValue(field, BASIC_ANNOTATIONS, "optional"));
+    }
+
+    private AnnotationSpec jsonIncludeNonNull() {
+        return AnnotationSpec.builder(ClassName.get("com.fasterxml.jackson.annotation", "JsonInclude"))
+                .addMember("value", "$T.NON_NULL", ClassName.get("com.fasterxml.jackson.annotation", "JsonInclude", "Include"))
+                .build();
+    }
+
+    /**
+     * Fields exposed by the patch DTO. Only columns can be patched, enums and converted types included: the id,
+     * relations, collections and embedded objects go through the full update. The version is managed by JPA,
+     * the client expectation comes with If-Match.
+     */
+    static List<Field> getPatchFields(Class<?> entityClass, IdDefinition idDefinition) {
+        VersionDefinition versionDefinition = VersionDefinition.of(entityClass);
+        List<Field> fields = new java.util.ArrayList<>();
+        for (Field field : GeneratorUtil.getFields(entityClass)) {
+            if (idDefinition.isIdField(field)
+                    || (versionDefinition != null && field.getName().equals(versionDefinition.getFieldName()))
+                    || java.lang.reflect.Modifier.isStatic(field.getModifiers())
+                    || field.getGenericType() instanceof java.lang.reflect.ParameterizedType
+                    || GeneratorUtil.isAssociation(field, field.getType())
+                    || GeneratorUtil.isEmbedded(field)) {
+                continue;
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    private void generatePatchDto(String packageName, Class<?> entityClass, String entityName,
+                                  IdDefinition idDefinition) throws IOException {
+        // Null fields are left out of the payload and ignored by the mapper, so only the sent ones are applied
+        TypeSpec.Builder dtoBuilder = TypeSpec.classBuilder(entityName + "PatchDto")
+                .addAnnotation(ClassName.get("lombok", "RequiredArgsConstructor"))
+                .addAnnotation(ClassName.get("lombok", "Data"))
+                .addAnnotation(jsonIncludeNonNull())
+                .addModifiers(Modifier.PUBLIC);
+
+        for (Field field : getPatchFields(entityClass, idDefinition)) {
+            // Primitives are boxed, otherwise a missing field would be patched to its default value
+            dtoBuilder.addField(FieldSpec.builder(TypeName.get(field.getType()).box(), field.getName(), Modifier.PRIVATE).build());
         }
 
         utils.saveJavaFile(packageName + ".dto", dtoBuilder.build());
@@ -1,6 +1,7 @@
 package it.fabiodezuani.generator;
 
 import com.squareup.javapoet.*;
+import it.fabiodezuani.model.IdDefinition;
 import it.fabiodezuani.model.MapperEnum;
 import it.fabiodezuani.utils.GeneratorUtil;
 import org.slf4j.Logger;
@@ -8,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.lang.model.element.Modifier;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.util.List;
 
 public class MapperGenerator {
@@ -19,7 +21,9 @@ public class MapperGenerator {
         this.utils = utils;
     }
 
-    public void generate(String packageName, String entityName, List<Class<?>> joinedEntities, boolean skipMapper, MapperEnum mapper) throws IOException {
+    public void generate(String packageName, Class<?> entityClass, String entityName, IdDefinition idDefinition,
+                         List<Class<?>> joinedEntities, boolean skipMapper, MapperEnum mapper,
+                         boolean generatePatch, boolean nestedIdOnly) throws IOException {
         if (skipMapper) {
             logger.info("\uD83E\uDD20 Mapper skipped!");
             return;
@@ -27,13 +31,27 @@ public class MapperGenerator {
         List<String> entitylist = new java.util.ArrayList<>(List.copyOf(joinedEntities.stream().map(Class::getSimpleName).toList()));
         entitylist.add(entityName);
 
+        if (nestedIdOnly) {
+            // Relations are exposed as ids, so joined entities only need to be converted from and to their id.
+            // Embedded value objects have no id and keep their nested DTO
+            for (Class<?> joinedEntity : joinedEntities) {
+                if (GeneratorUtil.isEntity(joinedEntity)) {
+                    generateReferenceMapper(packageName, joinedEntity);
+                    entitylist.remove(joinedEntity.getSimpleName());
+                }
+            }
+        }
+
         for(String entity : entitylist){
+            // Partial updates are only exposed for the main entity
+            boolean patch = generatePatch && entity.equals(entityName);
             switch (mapper) {
                 case MAPSTRUCT:
-                    generateMapStructMapper(packageName, entity, joinedEntities.stream().map(Class::getSimpleName).toList());
+                    generateMapStructMapper(packageName, entity, joinedEntities.stream().map(Class::getSimpleName).toList(),
+                            patch ? getPatchIgnoredProperties(entityClass, idDefinition) : null);
                     break;
                 case OBJECT_MAPPER:
-                    generateObjectMapperMapper(packageName, entity);
+                    generateObjectMapperMapper(packageName, entity, patch);
                     break;
                 default:
                     throw new IllegalArgumentException("Unsupported mapper type: " + mapper);
@@ -41,7 +59,11 @@ public class MapperGenerator {
         }
     }
 
-    private void generateMapStructMapper(String packageName, String entityName, List<String> joinedEntities) throws IOException {
+    /**
+     * @param patchIgnored entity properties missing from the patch DTO, {@code null} when no patch method is generated
+     */
+    private void generateMapStructMapper(String packageName, String entityName, List<String> joinedEntities,
+                                         List<String> patchIgnored) throws IOException {
         TypeSpec.Builder mapperBuilder = TypeSpec.interfaceBuilder(entityName + "Mapper")
                 .addModifiers(Modifier.PUBLIC);
 
@@ -78,12 +100,104 @@ public class MapperGenerator {
                 .addParameter(utils.getDtoPackage(packageName, entityName), "dto")
                 .build());
 
+        if (patchIgnored != null) {
+            // Copies the non-null fields onto the loaded entity, leaving the others untouched
+            MethodSpec.Builder patch = MethodSpec.methodBuilder("patch")
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .addAnnotation(AnnotationSpec.builder(ClassName.get("org.mapstruct", "BeanMapping"))
+                            .addMember("nullValuePropertyMappingStrategy", "$T.IGNORE",
+                                    ClassName.get("org.mapstruct", "NullValuePropertyMappingStrategy"))
+                            .build());
+            // Declared explicitly, otherwise MapStruct reports them as unmapped in every build
+            for (String property : patchIgnored) {
+                patch.addAnnotation(AnnotationSpec.builder(ClassName.get("org.mapstruct", "Mapping"))
+                        .addMember("target", "$S", property)
+                        .addMember("ignore", "true")
+                        .build());
+            }
+            mapperBuilder.addMethod(patch
+                    .addParameter(utils.getPatchDtoPackage(packageName, entityName), "dto")
+                    .addParameter(ParameterSpec.builder(utils.getModelPackage(packageName, entityName), "entity")
+                            .addAnnotation(ClassName.get("org.mapstruct", "MappingTarget"))
+                            .build())
+                    .build());
+        }
+
         TypeSpec mapper = mapperBuilder.build();
         utils.saveJavaFile(packageName + ".mapper", mapper);
     }
 
-    private void generateObjectMapperMapper(String packageName, String entityName) throws IOException {
-        TypeSpec mapper = TypeSpec.classBuilder(entityName + "Mapper")
+    /**
+     * Writable entity properties the patch DTO does not carry.
+     */
+    private List<String> getPatchIgnoredProperties(Class<?> entityClass, IdDefinition idDefinition) {
+        List<Field> patchFields = DtoGenerator.getPatchFields(entityClass, idDefinition);
+        List<String> ignored = new java.util.ArrayList<>();
+        for (Field field : GeneratorUtil.getFields(entityClass)) {
+            if (java.lang.reflect.Modifier.isStatic(field.getModifiers()) || patchFields.contains(field)) {
+                continue;
+            }
+            try {
+                entityClass.getMethod(GeneratorUtil.accessorName("set", field.getName()), field.getType());
+                ignored.add(field.getName());
+            } catch (NoSuchMethodException e) {
+                // Not a target property, nothing to ignore
+            }
+        }
+        return ignored;
+    }
+
+    private void generateReferenceMapper(String packageName, Class<?> entityClass) throws IOException {
+        String entityName = entityClass.getSimpleName();
+        IdDefinition idDefinition = IdDefinition.of(entityClass);
+        ClassName entity = utils.getModelPackage(packageName, entityName);
+
+        MethodSpec.Builder toId = MethodSpec.methodBuilder("toId")
+                .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                .returns(idDefinition.getBoxedTypeName())
+                .addParameter(entity, "entity");
+        MethodSpec.Builder fromId = MethodSpec.methodBuilder("fromId")
+                .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                .returns(entity)
+                .addParameter(idDefinition.getBoxedTypeName(), "id")
+                .beginControlFlow("if (id == null)")
+                .addStatement("return null")
+                .endControlFlow()
+                .addStatement("$T entity = new $T()", entity, entity);
+
+        if (idDefinition.isIdClass()) {
+            // The key is spread over the entity fields, it is copied component by component
+            toId.beginControlFlow("if (entity == null)")
+                    .addStatement("return null")
+                    .endControlFlow()
+                    .addStatement("$T id = new $T()", idDefinition.getType(), idDefinition.getType());
+            for (Field component : idDefinition.getComponents()) {
+                String getter = GeneratorUtil.accessorName("get", component.getName());
+                String setter = GeneratorUtil.accessorName("set", component.getName());
+                toId.addStatement("id.$L(entity.$L())", setter, getter);
+                fromId.addStatement("entity.$L(id.$L())", setter, getter);
+            }
+            toId.addStatement("return id");
+        } else {
+            // Reading the id does not initialize a lazy proxy
+            toId.addStatement("return entity == null ? null : entity.$L()", idDefinition.getGetterName());
+            fromId.addStatement("entity.$L(id)", idDefinition.getSetterName());
+        }
+
+        TypeSpec mapper = TypeSpec.interfaceBuilder(entityName + "Mapper")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(AnnotationSpec.builder(ClassName.get("org.mapstruct", "Mapper"))
+                        .addMember("componentModel", "$S", "spring")
+                        .build())
+                .addMethod(toId.build())
+                .addMethod(fromId.addStatement("return entity").build())
+                .build();
+
+        utils.saveJavaFile(packageName + ".mapper", mapper);
+    }
+
+    private void generateObjectMapperMapper(String packageName, String entityName, boolean patch) throws IOException {
+        TypeSpec.Builder mapperBuilder = TypeSpec.classBuilder(entityName + "Mapper")
                 .addModifiers(Modifier.PUBLIC)
                 .addAnnotation(ClassName.get("org.springframework.stereotype", "Component"))
                 .addAnnotation(ClassName.get("lombok.extern.slf4j", "Slf4j")) // Add Slf4j annotation for logging
@@ -115,9 +229,27 @@ public class MapperGenerator {
                         .addStatement("log.error(\"Error converting DTO to entity\", e)")
                         .addStatement("return null")
                         .endControlFlow()
-                        .build())
-                .build();
+                        .build());
 
+        if (patch) {
+            // The patch DTO skips null fields when serialized, so only the sent ones are read into the entity
+            mapperBuilder.addMethod(MethodSpec.methodBuilder("patch")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(utils.getPatchDtoPackage(packageName, entityName), "dto")
+                    .addParameter(utils.getModelPackage(packageName, entityName), "entity")
+                    .beginControlFlow("try")
+                    .addStatement("objectMapper.readerForUpdating(entity).readValue(objectMapper.writeValueAsString(dto))")
+                    .nextControlFlow("catch ($T e)", ClassName.get("com.fasterxml.jackson.core", "JsonProcessingException"))
+                    .addStatement("log.error(\"Error patching entity from DTO\", e)")
+                    // Rethrown so that the transaction is rolled back, the values sent cannot be applied: 400 Bad Request
+                    .addStatement("throw new $T($T.BAD_REQUEST, $S, e)",
+                            ClassName.get("org.springframework.web.server", "ResponseStatusException"),
+                            ClassName.get("org.springframework.http", "HttpStatus"), "Unable to apply patch")
+                    .endControlFlow()
+                    .build());
+        }
+
+        TypeSpec mapper = mapperBuilder.build();
 
         utils.saveJavaFile(packageName + ".mapper", mapper);
     }
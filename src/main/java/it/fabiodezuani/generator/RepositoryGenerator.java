@@ -1,14 +1,15 @@
 package it.fabiodezuani.generator;
 
-import com.squareup.javapoet.ClassName;
-import com.squareup.javapoet.ParameterizedTypeName;
-import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.*;
+import it.fabiodezuani.model.IdDefinition;
+import it.fabiodezuani.model.VersionDefinition;
 import it.fabiodezuani.utils.GeneratorUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.lang.model.element.Modifier;
 import java.io.IOException;
+import java.util.stream.Collectors;
 
 public class RepositoryGenerator {
     private static final Logger logger = LoggerFactory.getLogger(RepositoryGenerator.class);
@@ -19,27 +20,50 @@ public class RepositoryGenerator {
         this.utils = utils;
     }
 
-    public void generate(String packageName, String entityName, boolean skipRepository) throws IOException {
+    public void generate(String packageName, Class<?> entityClass, String entityName, IdDefinition idDefinition,
+                         VersionDefinition versionDefinition, boolean skipRepository) throws IOException {
 
         if(skipRepository) {
             logger.info("\uD83E\uDD20 Repository skipped!");
             return;
         }
 
-        TypeSpec repository = TypeSpec.interfaceBuilder(entityName + "Repository")
+        TypeSpec.Builder repositoryBuilder = TypeSpec.interfaceBuilder(entityName + "Repository")
                 .addModifiers(Modifier.PUBLIC)
                 .addSuperinterface(ParameterizedTypeName.get(
                         ClassName.get("org.springframework.data.repository", "PagingAndSortingRepository"),
                         utils.getModelPackage(packageName, entityName),
-                        ClassName.get(Long.class)
+                        idDefinition.getBoxedTypeName()
                 ))
                 .addSuperinterface(ParameterizedTypeName.get(
                         ClassName.get("org.springframework.data.jpa.repository", "JpaRepository"),
                         utils.getModelPackage(packageName, entityName),
-                        ClassName.get(Long.class)
-                ))
-                .build();
+                        idDefinition.getBoxedTypeName()
+                ));
+
+        if (versionDefinition != null) {
+            // An @IdClass key is not an attribute of the entity, so its components are compared one by one
+            String idCondition = idDefinition.isIdClass()
+                    ? idDefinition.getComponents().stream()
+                            .map(component -> "e." + component.getName() + " = :#{#id." + component.getName() + "}")
+                            .collect(Collectors.joining(" and "))
+                    : "e." + idDefinition.getFieldName() + " = :id";
+            // Reads the version alone, so conditional requests can be answered without loading the entity
+            repositoryBuilder.addMethod(MethodSpec.methodBuilder("findVersionById")
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.data.jpa.repository", "Query"))
+                            .addMember("value", "$S", "select e." + versionDefinition.getFieldName() + " from " + GeneratorUtil.getEntityName(entityClass)
+                                    + " e where " + idCondition)
+                            .build())
+                    .returns(ParameterizedTypeName.get(ClassName.get("java.util", "Optional"), versionDefinition.getBoxedTypeName()))
+                    .addParameter(ParameterSpec.builder(idDefinition.getBoxedTypeName(), "id")
+                            .addAnnotation(AnnotationSpec.builder(ClassName.get("org.springframework.data.repository.query", "Param"))
+                                    .addMember("value", "$S", "id")
+                                    .build())
+                            .build())
+                    .build());
+        }
 
-        utils.saveJavaFile(packageName + ".repository", repository);
+        utils.saveJavaFile(packageName + ".repository", repositoryBuilder.build());
     }
 }
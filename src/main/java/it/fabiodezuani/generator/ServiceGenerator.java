@@ -1,12 +1,15 @@
 package it.fabiodezuani.generator;
 
 import com.squareup.javapoet.*;
+import it.fabiodezuani.model.IdDefinition;
+import it.fabiodezuani.model.VersionDefinition;
 import it.fabiodezuani.utils.GeneratorUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.lang.model.element.Modifier;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.util.List;
 
 public class ServiceGenerator {
@@ -18,7 +21,9 @@ public class ServiceGenerator {
         this.utils = utils;
     }
 
-    public void generate(String packageName, String entityName, boolean skipService) throws IOException {
+    public void generate(String packageName, String entityName, IdDefinition idDefinition,
+                         VersionDefinition versionDefinition, boolean skipService, boolean generatePatch,
+                         boolean compactDto) throws IOException {
 
         if(skipService) {
             logger.info("\uD83E\uDD20 Service skipped!");
@@ -28,8 +33,9 @@ public class ServiceGenerator {
         ClassName repository = utils.getRepositoryPackage(packageName, entityName);
         ClassName mapper = utils.getMapperPackage(packageName, entityName);
         ClassName dto = utils.getDtoPackage(packageName, entityName);
+        ClassName entity = utils.getModelPackage(packageName, entityName);
 
-        TypeSpec service = TypeSpec.classBuilder(entityName + "Service")
+        TypeSpec.Builder serviceBuilder = TypeSpec.classBuilder(entityName + "Service")
                 .addModifiers(Modifier.PUBLIC)
                 .addAnnotation(ClassName.get("org.springframework.stereotype", "Service"))
                 .addAnnotation(ClassName.get("lombok", "RequiredArgsConstructor"))
@@ -50,7 +56,7 @@ public class ServiceGenerator {
                 .addMethod(MethodSpec.methodBuilder("findById")
                         .addModifiers(Modifier.PUBLIC)
                         .returns(dto)
-                        .addParameter(Long.class, "id")
+                        .addParameter(idDefinition.getTypeName(), "id")
                         .addStatement("log.debug(\"Executing findById() method with id: {}\", id)")
                         .addStatement("return repository.findById(id).map(mapper::toDTO).orElse(null)")
                         .build())
@@ -69,33 +75,176 @@ public class ServiceGenerator {
                 // Delete by ID
                 .addMethod(MethodSpec.methodBuilder("deleteById")
                         .addModifiers(Modifier.PUBLIC)
-                        .addParameter(Long.class, "id")
+                        .addParameter(idDefinition.getTypeName(), "id")
                         .addStatement("log.debug(\"Executing deleteById() method with id: {}\", id)")
                         .addStatement("repository.deleteById(id)")
                         .addStatement("log.info(\"Entity with id {} deleted successfully\", id)")
                         .build())
 
                 // Update method
-                .addMethod(MethodSpec.methodBuilder("update")
-                        .addModifiers(Modifier.PUBLIC)
-                        .returns(dto)
-                        .addParameter(Long.class, "id")
-                        .addParameter(dto, "dto")
-                        .addStatement("dto.setId(id)")
-                        .addStatement("log.debug(\"Executing update() method with id: {} and DTO: {}\", id, dto)")
-                        .beginControlFlow("if (repository.existsById(id))")  // Check if the entity exists
-                        .addStatement("log.info(\"Entity with id {} found, proceeding with update\", id)")
-                        .addStatement("dto = mapper.toDTO(repository.save(mapper.toEntity(dto)))") // Update and save
-                        .addStatement("log.info(\"Entity with id {} updated successfully: {}\", id, dto)")
-                        .addStatement("return dto")
-                        .endControlFlow()
-                        .addStatement("log.warn(\"Entity with id {} not found, cannot update\", id)") // Log warning if entity is not found
-                        .addStatement("return null") // Return null if entity doesn't exist
-                        .build())
+                .addMethod(updateMethod(dto, entity, idDefinition, versionDefinition, compactDto));
+
+        if (versionDefinition != null) {
+            // Find version by ID
+            serviceBuilder.addMethod(MethodSpec.methodBuilder("findVersionById")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(versionDefinition.getBoxedTypeName())
+                    .addParameter(idDefinition.getTypeName(), "id")
+                    .addStatement("log.debug(\"Executing findVersionById() method with id: {}\", id)")
+                    .addStatement("return repository.findVersionById(id).orElse(null)")
+                    .build());
+
+            addVersionHelpers(serviceBuilder, idDefinition, versionDefinition);
+        }
+
+        if (generatePatch) {
+            // Patch method, the loaded entity is managed so dirty checking writes only what changed.
+            // It is flushed before mapping, so the returned DTO carries the incremented version
+            MethodSpec.Builder patch = MethodSpec.methodBuilder("patch")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(ClassName.get("org.springframework.transaction.annotation", "Transactional"))
+                    .returns(dto)
+                    .addParameter(idDefinition.getTypeName(), "id");
+            if (versionDefinition != null) {
+                patch.addParameter(String.class, "ifMatch");
+            }
+            patch.addParameter(utils.getPatchDtoPackage(packageName, entityName), "dto")
+                    .addStatement("log.debug(\"Executing patch() method with id: {} and DTO: {}\", id, dto)")
+                    .addStatement("$T<$T> entity = repository.findById(id)", ClassName.get("java.util", "Optional"), entity)
+                    .beginControlFlow("if (entity.isPresent())");
+            if (versionDefinition != null) {
+                patch.addStatement("checkVersion(id, ifMatch, entity.get().$L())", versionDefinition.getGetterName());
+            }
+            serviceBuilder.addMethod(patch
+                    .addStatement("mapper.patch(dto, entity.get())")
+                    .addStatement("$T patched = mapper.toDTO(repository.saveAndFlush(entity.get()))", dto)
+                    .addStatement("log.info(\"Entity with id {} patched successfully\", id)")
+                    .addStatement("return patched")
+                    .endControlFlow()
+                    .addStatement("log.warn(\"Entity with id {} not found, cannot patch\", id)")
+                    .addStatement("return null")
+                    .build());
+        }
+
+        utils.saveJavaFile(packageName + ".service", serviceBuilder.build());
+    }
 
+    private MethodSpec updateMethod(ClassName dto, ClassName entity, IdDefinition idDefinition,
+                                    VersionDefinition versionDefinition, boolean compactDto) {
+        MethodSpec.Builder update = MethodSpec.methodBuilder("update")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(dto)
+                .addParameter(idDefinition.getTypeName(), "id");
+        if (versionDefinition != null) {
+            update.addParameter(String.class, "ifMatch");
+        }
+        update.addParameter(dto, "dto")
+                .addCode(idAssignment(idDefinition, compactDto))
+                .addStatement("log.debug(\"Executing update() method with id: {} and DTO: {}\", id, dto)");
+
+        if (versionDefinition == null) {
+            return update.beginControlFlow("if (repository.existsById(id))")  // Check if the entity exists
+                    .addStatement("log.info(\"Entity with id {} found, proceeding with update\", id)")
+                    .addStatement("dto = mapper.toDTO(repository.save(mapper.toEntity(dto)))") // Update and save
+                    .addStatement("log.info(\"Entity with id {} updated successfully: {}\", id, dto)")
+                    .addStatement("return dto")
+                    .endControlFlow()
+                    .addStatement("log.warn(\"Entity with id {} not found, cannot update\", id)") // Log warning if entity is not found
+                    .addStatement("return null") // Return null if entity doesn't exist
+                    .build();
+        }
+
+        // The matched version takes precedence over the one in the body. Without either, the current version is
+        // kept: a null version would make Spring Data persist the detached entity instead of merging it
+        String keepCurrentVersion = versionDefinition.getType().isPrimitive()
+                ? "if (ifMatch != null)"
+                : "if (ifMatch != null || updated." + versionDefinition.getGetterName() + "() == null)";
+
+        // The version is checked and the row written in the same transaction, so no update can slip in between
+        return update.addAnnotation(ClassName.get("org.springframework.transaction.annotation", "Transactional"))
+                .addStatement("$T<$T> current = repository.findById(id)", ClassName.get("java.util", "Optional"), entity)
+                .beginControlFlow("if (current.isPresent())")
+                .addStatement("checkVersion(id, ifMatch, current.get().$L())", versionDefinition.getGetterName())
+                .addStatement("log.info(\"Entity with id {} found, proceeding with update\", id)")
+                .addStatement("$T updated = mapper.toEntity(dto)", entity)
+                .beginControlFlow(keepCurrentVersion)
+                .addStatement("updated.$L(current.get().$L())", versionDefinition.getSetterName(), versionDefinition.getGetterName())
+                .endControlFlow()
+                .addStatement("dto = mapper.toDTO(repository.saveAndFlush(updated))")
+                .addStatement("log.info(\"Entity with id {} updated successfully: {}\", id, dto)")
+                .addStatement("return dto")
+                .endControlFlow()
+                .addStatement("log.warn(\"Entity with id {} not found, cannot update\", id)")
+                .addStatement("return null")
                 .build();
+    }
+
+    /**
+     * Copies the path id into the DTO, component by component with {@code @IdClass}.
+     */
+    private CodeBlock idAssignment(IdDefinition idDefinition, boolean compactDto) {
+        if (!idDefinition.isIdClass()) {
+            return compactDto
+                    ? CodeBlock.builder().addStatement("dto = dto.$L(id)", idDefinition.getWitherName()).build()
+                    : CodeBlock.builder().addStatement("dto.$L(id)", idDefinition.getSetterName()).build();
+        }
+        CodeBlock.Builder code = CodeBlock.builder();
+        for (Field component : idDefinition.getComponents()) {
+            String name = component.getName();
+            if (compactDto) {
+                code.addStatement("dto = dto.$L(id.$L())", GeneratorUtil.accessorName("with", name), GeneratorUtil.accessorName("get", name));
+            } else {
+                code.addStatement("dto.$L(id.$L())", GeneratorUtil.accessorName("set", name), GeneratorUtil.accessorName("get", name));
+            }
+        }
+        return code.build();
+    }
 
-        utils.saveJavaFile(packageName + ".service", service);
+    private void addVersionHelpers(TypeSpec.Builder serviceBuilder, IdDefinition idDefinition,
+                                   VersionDefinition versionDefinition) {
+        serviceBuilder.addMethod(MethodSpec.methodBuilder("checkVersion")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(idDefinition.getTypeName(), "id")
+                .addParameter(String.class, "ifMatch")
+                .addParameter(versionDefinition.getBoxedTypeName(), "version")
+                .beginControlFlow("if (ifMatch != null && !matches(ifMatch, version, false))")
+                .addStatement("log.warn(\"Entity with id {} is at version {}, If-Match {} does not match\", id, version, ifMatch)")
+                .addStatement("throw new $T(\"Entity with id \" + id + \" was modified\")",
+                        ClassName.get("org.springframework.dao", "OptimisticLockingFailureException"))
+                .endControlFlow()
+                .build());
+
+        // Timestamps contain characters not allowed in an entity-tag, so non numeric versions are encoded
+        CodeBlock value = versionDefinition.isNumeric()
+                ? CodeBlock.of("version")
+                : CodeBlock.of("$T.getUrlEncoder().withoutPadding().encodeToString(version.toString().getBytes($T.UTF_8))",
+                        ClassName.get("java.util", "Base64"), ClassName.get("java.nio.charset", "StandardCharsets"));
+        serviceBuilder.addMethod(MethodSpec.methodBuilder("eTag")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(String.class)
+                .addParameter(Object.class, "version")
+                .addStatement("return \"\\\"\" + $L + \"\\\"\"", value)
+                .build());
+
+        // If-None-Match uses the weak comparison and also accepts W/ tags, If-Match the strong one (RFC 9110 13.1)
+        serviceBuilder.addMethod(MethodSpec.methodBuilder("matches")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(boolean.class)
+                .addParameter(String.class, "header")
+                .addParameter(Object.class, "version")
+                .addParameter(boolean.class, "weak")
+                .beginControlFlow("if (version == null)")
+                .addStatement("return false")
+                .endControlFlow()
+                .addStatement("String eTag = eTag(version)")
+                .beginControlFlow("for (String tag : header.split($S))", ",")
+                .addStatement("String trimmed = tag.trim()")
+                .beginControlFlow("if (trimmed.equals($S) || trimmed.equals(eTag) || (weak && trimmed.equals($S + eTag)))", "*", "W/")
+                .addStatement("return true")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return false")
+                .build());
     }
 
 }
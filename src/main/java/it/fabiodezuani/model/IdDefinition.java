@@ -0,0 +1,203 @@
+package it.fabiodezuani.model;
+
+import com.squareup.javapoet.TypeName;
+import it.fabiodezuani.utils.GeneratorUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Describes the identifier of an entity as detected from its {@code @Id} or {@code @EmbeddedId} field, or from
+ * its {@code @IdClass} and the {@code @Id} fields mapped to it.
+ */
+public class IdDefinition {
+    private static final Logger logger = LoggerFactory.getLogger(IdDefinition.class);
+
+    private static final Set<String> ID_ANNOTATIONS = Set.of(
+            "jakarta.persistence.Id",
+            "javax.persistence.Id",
+            "org.springframework.data.annotation.Id");
+    private static final Set<String> EMBEDDED_ID_ANNOTATIONS = Set.of(
+            "jakarta.persistence.EmbeddedId",
+            "javax.persistence.EmbeddedId");
+    private static final Set<String> ID_CLASS_ANNOTATIONS = Set.of(
+            "jakarta.persistence.IdClass",
+            "javax.persistence.IdClass");
+
+    private final String fieldName;
+    private final Class<?> type;
+    private final boolean embedded;
+    private final List<Field> idClassFields;
+
+    private IdDefinition(String fieldName, Class<?> type, boolean embedded, List<Field> idClassFields) {
+        this.fieldName = fieldName;
+        this.type = type;
+        this.embedded = embedded;
+        this.idClassFields = idClassFields;
+    }
+
+    private IdDefinition(String fieldName, Class<?> type, boolean embedded) {
+        this(fieldName, type, embedded, List.of());
+    }
+
+    public static IdDefinition of(Class<?> entityClass) {
+        for (Class<?> current = entityClass; current != null && current != Object.class; current = current.getSuperclass()) {
+            Object idClass = GeneratorUtil.getAnnotationValue(current, ID_CLASS_ANNOTATIONS, "value");
+            if (idClass != null) {
+                return ofIdClass(entityClass, (Class<?>) idClass);
+            }
+        }
+
+        Field fallback = null;
+        for (Class<?> current = entityClass; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (isEmbeddedId(field)) {
+                    return new IdDefinition(field.getName(), field.getType(), true);
+                }
+                if (isId(field)) {
+                    return new IdDefinition(field.getName(), field.getType(), false);
+                }
+                if (fallback == null && field.getName().equals("id")) {
+                    fallback = field;
+                }
+            }
+        }
+
+        if (fallback != null) {
+            logger.warn("⚠️ No @Id found on {}, using field 'id' of type {}", entityClass.getSimpleName(), fallback.getType().getSimpleName());
+            return new IdDefinition(fallback.getName(), fallback.getType(), false);
+        }
+
+        logger.warn("⚠️ No @Id found on {}, defaulting to Long id", entityClass.getSimpleName());
+        return new IdDefinition("id", Long.class, false);
+    }
+
+    private static IdDefinition ofIdClass(Class<?> entityClass, Class<?> idClass) {
+        List<Field> idFields = new ArrayList<>();
+        for (Class<?> current = entityClass; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (isId(field)) {
+                    idFields.add(field);
+                }
+            }
+        }
+        // The @Id fields are the path components and are copied from the key, so each needs its counterpart
+        for (Field idField : idFields) {
+            try {
+                idClass.getDeclaredField(idField.getName());
+            } catch (NoSuchFieldException e) {
+                throw new IllegalStateException("@IdClass " + idClass.getSimpleName() + " of " + entityClass.getSimpleName()
+                        + " has no field " + idField.getName(), e);
+            }
+        }
+        if (idFields.isEmpty()) {
+            throw new IllegalStateException(entityClass.getSimpleName() + " declares @IdClass but no @Id field");
+        }
+        return new IdDefinition(null, idClass, false, idFields);
+    }
+
+    public static boolean isId(Field field) {
+        return GeneratorUtil.hasAnnotation(field, ID_ANNOTATIONS);
+    }
+
+    public static boolean isEmbeddedId(Field field) {
+        return GeneratorUtil.hasAnnotation(field, EMBEDDED_ID_ANNOTATIONS);
+    }
+
+    /**
+     * Name of the id field, {@code null} with {@code @IdClass} where the id is spread over the components.
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public boolean isEmbedded() {
+        return embedded;
+    }
+
+    public boolean isIdClass() {
+        return !idClassFields.isEmpty();
+    }
+
+    /**
+     * Whether the id is made of several components, each bound to its own path segment.
+     */
+    public boolean isComposite() {
+        return embedded || isIdClass();
+    }
+
+    /**
+     * Whether the entity field holds the id or, with {@code @IdClass}, one of its components.
+     */
+    public boolean isIdField(Field field) {
+        return isIdClass() ? idClassFields.contains(field) : field.getName().equals(fieldName);
+    }
+
+    /**
+     * Type used for method parameters, primitives are kept as they are.
+     */
+    public TypeName getTypeName() {
+        return TypeName.get(type);
+    }
+
+    /**
+     * Type used as generic argument, e.g. in the repository declaration.
+     */
+    public TypeName getBoxedTypeName() {
+        return getTypeName().box();
+    }
+
+    public String getGetterName() {
+        return GeneratorUtil.accessorName("get", fieldName);
+    }
+
+    public String getSetterName() {
+        return GeneratorUtil.accessorName("set", fieldName);
+    }
+
+    public String getWitherName() {
+        return GeneratorUtil.accessorName("with", fieldName);
+    }
+
+    /**
+     * Fields of the embedded key or {@code @Id} fields of an {@code @IdClass} entity, in declaration order.
+     * Empty for simple ids.
+     */
+    public List<Field> getComponents() {
+        if (isIdClass()) {
+            return idClassFields;
+        }
+        List<Field> components = new ArrayList<>();
+        if (!embedded) {
+            return components;
+        }
+        for (Field field : type.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                components.add(field);
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Request path addressing a single entity: {@code /{id}} or one segment per key component.
+     */
+    public String getPath() {
+        if (!isComposite()) {
+            return "/{id}";
+        }
+        return getComponents().stream()
+                .map(component -> "/{" + component.getName() + "}")
+                .collect(Collectors.joining());
+    }
+}
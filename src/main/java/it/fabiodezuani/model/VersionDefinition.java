@@ -0,0 +1,67 @@
+package it.fabiodezuani.model;
+
+import com.squareup.javapoet.TypeName;
+import it.fabiodezuani.utils.GeneratorUtil;
+
+import java.lang.reflect.Field;
+import java.util.Set;
+
+/**
+ * Describes the optimistic locking field of an entity, as detected from its {@code @Version} annotation.
+ */
+public class VersionDefinition {
+
+    private static final Set<String> VERSION_ANNOTATIONS = Set.of(
+            "jakarta.persistence.Version",
+            "javax.persistence.Version",
+            "org.springframework.data.annotation.Version");
+
+    private final String fieldName;
+    private final Class<?> type;
+
+    private VersionDefinition(String fieldName, Class<?> type) {
+        this.fieldName = fieldName;
+        this.type = type;
+    }
+
+    /**
+     * @return the version definition, or {@code null} if the entity is not versioned
+     */
+    public static VersionDefinition of(Class<?> entityClass) {
+        for (Class<?> current = entityClass; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (GeneratorUtil.hasAnnotation(field, VERSION_ANNOTATIONS)) {
+                    return new VersionDefinition(field.getName(), field.getType());
+                }
+            }
+        }
+        return null;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Boxed type, the version of a missing entity is {@code null}.
+     */
+    public TypeName getBoxedTypeName() {
+        return TypeName.get(type).box();
+    }
+
+    public boolean isNumeric() {
+        return type.isPrimitive() || Number.class.isAssignableFrom(type);
+    }
+
+    public String getGetterName() {
+        return GeneratorUtil.accessorName("get", fieldName);
+    }
+
+    public String getSetterName() {
+        return GeneratorUtil.accessorName("set", fieldName);
+    }
+}
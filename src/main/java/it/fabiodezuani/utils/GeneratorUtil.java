@@ -6,11 +6,33 @@ import com.squareup.javapoet.TypeSpec;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 public class GeneratorUtil {
 
+    private static final Set<String> ENTITY_ANNOTATIONS = Set.of(
+            "jakarta.persistence.Entity",
+            "javax.persistence.Entity");
+    private static final Set<String> ASSOCIATION_ANNOTATIONS = Set.of(
+            "jakarta.persistence.ManyToOne", "jakarta.persistence.OneToOne",
+            "jakarta.persistence.OneToMany", "jakarta.persistence.ManyToMany",
+            "javax.persistence.ManyToOne", "javax.persistence.OneToOne",
+            "javax.persistence.OneToMany", "javax.persistence.ManyToMany");
+    private static final Set<String> EMBEDDED_ANNOTATIONS = Set.of(
+            "jakarta.persistence.Embedded", "jakarta.persistence.EmbeddedId",
+            "javax.persistence.Embedded", "javax.persistence.EmbeddedId");
+    private static final Set<String> EMBEDDABLE_ANNOTATIONS = Set.of(
+            "jakarta.persistence.Embeddable",
+            "javax.persistence.Embeddable");
+
     private String outputDir;
     private boolean overrideFiles;
 
@@ -36,6 +58,10 @@ public class GeneratorUtil {
         return ClassName.get(packageName + ".dto", entityName + "Dto");
     }
 
+    public ClassName getPatchDtoPackage(String packageName, String entityName) throws IOException {
+        return ClassName.get(packageName + ".dto", entityName + "PatchDto");
+    }
+
     public ClassName getRepositoryPackage(String packageName, String entityName) throws IOException {
         return ClassName.get(packageName + ".repository", entityName + "Repository");
     }
@@ -44,6 +70,92 @@ public class GeneratorUtil {
         return ClassName.get(packageName + ".mapper", entityName + "Mapper");
     }
 
+    /**
+     * Annotations are matched by name: the persistence and validation APIs live on the project classpath,
+     * not on the plugin one.
+     */
+    public static Annotation findAnnotation(AnnotatedElement element, Set<String> annotationNames) {
+        for (Annotation annotation : element.getAnnotations()) {
+            if (annotationNames.contains(annotation.annotationType().getName())) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    public static boolean hasAnnotation(AnnotatedElement element, Set<String> annotationNames) {
+        return findAnnotation(element, annotationNames) != null;
+    }
+
+    /**
+     * @return the attribute of the first matching annotation, or {@code null} if the element is not annotated
+     */
+    public static Object getAnnotationValue(AnnotatedElement element, Set<String> annotationNames, String attribute) {
+        Annotation annotation = findAnnotation(element, annotationNames);
+        if (annotation == null) {
+            return null;
+        }
+        try {
+            return annotation.annotationType().getMethod(attribute).invoke(annotation);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to read " + attribute + " of " + annotation.annotationType().getName(), e);
+        }
+    }
+
+    public static boolean isEntity(Class<?> type) {
+        return hasAnnotation(type, ENTITY_ANNOTATIONS);
+    }
+
+    /**
+     * Whether the field references another entity, as opposed to e.g. an embedded value object.
+     *
+     * @param targetType the referenced type, the element type for collections
+     */
+    public static boolean isAssociation(Field field, Class<?> targetType) {
+        return hasAnnotation(field, ASSOCIATION_ANNOTATIONS) || isEntity(targetType);
+    }
+
+    /**
+     * Whether the type is copied as it is, JDK types and enums, as opposed to a nested object with its own DTO.
+     */
+    public static boolean isPlainType(Class<?> type) {
+        return type.isEnum() || type.getPackageName().startsWith("java");
+    }
+
+    /**
+     * Whether the field holds an embedded value object, declared on the field or on its type.
+     */
+    public static boolean isEmbedded(Field field) {
+        return hasAnnotation(field, EMBEDDED_ANNOTATIONS) || hasAnnotation(field.getType(), EMBEDDABLE_ANNOTATIONS);
+    }
+
+    /**
+     * Fields of the class and of its superclasses, superclass first, so that e.g. an id or a version declared on a
+     * {@code @MappedSuperclass} is found where the id and version detection finds it.
+     */
+    public static List<Field> getFields(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            fields.addAll(0, Arrays.asList(current.getDeclaredFields()));
+        }
+        return fields;
+    }
+
+    /**
+     * Name of the entity in JPQL queries: {@code @Entity(name)} when set, the simple class name otherwise.
+     */
+    public static String getEntityName(Class<?> entityClass) {
+        Object name = getAnnotationValue(entityClass, ENTITY_ANNOTATIONS, "name");
+        return name == null || name.toString().isEmpty() ? entityClass.getSimpleName() : name.toString();
+    }
+
+    /**
+     * Bean accessor name, e.g. {@code accessorName("get", "id")} returns {@code getId}.
+     */
+    public static String accessorName(String prefix, String fieldName) {
+        return prefix + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+    }
+
     public void saveJavaFile(String packageName, TypeSpec typeSpec) throws IOException {
         JavaFile javaFile = JavaFile.builder(packageName, typeSpec).build();
         String packagePath = packageName.replace(".", "/");  // Correctly format the package path